@@ -1,29 +1,133 @@
 package foundation.privacybydesign.common;
 
+import java.nio.ByteBuffer;
+
 /**
  * Class with methods not belonging anywhere else.
+ *
+ * The comparison methods below run in time that only depends on the length
+ * of the second (expected) argument, never on its contents or on where the
+ * first difference is. The first argument is assumed to be the untrusted
+ * input: its length is known to the attacker anyway, so a length mismatch is
+ * folded into the result instead of returning early. None of them allocate.
+ *
+ * Background:
+ *   https://codahale.com/a-lesson-in-timing-attacks/
+ *   https://golang.org/src/crypto/subtle/constant_time.go (ConstantTimeCompare)
  */
 public class CryptoUtil {
     /**
-     * Compare two byte arrays in constant time. I haven't been able to
-     * quickly find a Java API for this (which would be a much better idea
-     * than reinventing the wheel).
+     * Compare two char arrays in constant time.
      */
     public static boolean isEqualsConstantTime(char[] a, char[] b) {
-        // I hope this is safe...
-        // https://codahale.com/a-lesson-in-timing-attacks/
-        // https://golang.org/src/crypto/subtle/constant_time.go (ConstantTimeCompare)
-        // In Go, they also take special care to compare the result byte
-        // bit-for-bit in constant time.
-
-        if (a.length != b.length) {
-            return false;
+        int result = a.length ^ b.length;
+        for (int i = 0; i < b.length; i++) {
+            // Accumulate the full char (not just the low byte) so a
+            // difference in the high byte isn't lost.
+            int x = i < a.length ? a[i] : 0;
+            result |= x ^ b[i];
+        }
+        return result == 0;
+    }
+
+    /**
+     * Compare two byte arrays in constant time.
+     */
+    public static boolean isEqualsConstantTime(byte[] a, byte[] b) {
+        int result = a.length ^ b.length;
+        for (int i = 0; i < b.length; i++) {
+            int x = i < a.length ? a[i] : 0;
+            result |= x ^ b[i];
+        }
+        return result == 0;
+    }
+
+    /**
+     * Compare the remaining bytes of two buffers in constant time. Works for
+     * both heap and direct buffers. Uses absolute reads, so the position of
+     * the buffers is not changed.
+     */
+    public static boolean isEqualsConstantTime(ByteBuffer a, ByteBuffer b) {
+        int aOffset = a.position();
+        int bOffset = b.position();
+        int aLength = a.remaining();
+        int bLength = b.remaining();
+
+        int result = aLength ^ bLength;
+        for (int i = 0; i < bLength; i++) {
+            int x = i < aLength ? a.get(aOffset + i) : 0;
+            result |= x ^ b.get(bOffset + i);
+        }
+        return result == 0;
+    }
+
+    /**
+     * Compare two character sequences (e.g. Strings) in constant time,
+     * without copying them into a char array first.
+     */
+    public static boolean isEqualsConstantTime(CharSequence a, CharSequence b) {
+        int aLength = a.length();
+        int bLength = b.length();
+
+        int result = aLength ^ bLength;
+        for (int i = 0; i < bLength; i++) {
+            int x = i < aLength ? a.charAt(i) : 0;
+            result |= x ^ b.charAt(i);
         }
+        return result == 0;
+    }
 
-        byte result = 0;
-        for (int i = 0; i < a.length; i++) {
-            result |= a[i] ^ b[i];
+    /**
+     * Compare an unpadded base64url-encoded string (RFC 4648 section 5, no
+     * trailing '=') against a raw digest in constant time. The input is
+     * decoded on the fly, so no intermediate string or byte array is built.
+     * Invalid characters and non-zero trailing bits make the comparison
+     * fail.
+     */
+    public static boolean isEqualsBase64UrlConstantTime(CharSequence encoded, byte[] digest) {
+        int encodedLength = (digest.length * 8 + 5) / 6;
+        int length = encoded.length();
+
+        int result = length ^ encodedLength;
+        int buffer = 0;
+        int bits = 0;
+        int j = 0;
+        for (int i = 0; i < encodedLength; i++) {
+            int c = i < length ? encoded.charAt(i) : 'A';
+            int value = decodeBase64UrlChar(c);
+            result |= value >> 31; // -1 for invalid characters
+            buffer = (buffer << 6) | (value & 0x3f);
+            bits += 6;
+            // Whether a byte is complete only depends on i, not on the data.
+            if (bits >= 8) {
+                bits -= 8;
+                result |= ((buffer >> bits) ^ digest[j++]) & 0xff;
+                buffer &= (1 << bits) - 1;
+            }
         }
+        // Leftover bits must be zero in a canonical encoding.
+        result |= buffer;
         return result == 0;
     }
+
+    /**
+     * Decode a single base64url character without branches or table
+     * lookups. Returns the 6-bit value, or -1 for an invalid character.
+     * Based on the approach used in paragonie/constant_time_encoding, but
+     * using the sign bit (>> 31) so it also works for chars above 0xff.
+     */
+    private static int decodeBase64UrlChar(int c) {
+        int ret = -1;
+        // 'A'-'Z' (0x41-0x5a): c - 0x41 + 1
+        ret += (((0x40 - c) & (c - 0x5b)) >> 31) & (c - 64);
+        // 'a'-'z' (0x61-0x7a): c - 0x61 + 26 + 1
+        ret += (((0x60 - c) & (c - 0x7b)) >> 31) & (c - 70);
+        // '0'-'9' (0x30-0x39): c - 0x30 + 52 + 1
+        ret += (((0x2f - c) & (c - 0x3a)) >> 31) & (c + 5);
+        // '-' (0x2d): 62 + 1
+        ret += (((0x2c - c) & (c - 0x2e)) >> 31) & 63;
+        // '_' (0x5f): 63 + 1
+        ret += (((0x5e - c) & (c - 0x60)) >> 31) & 64;
+        return ret;
+    }
 }
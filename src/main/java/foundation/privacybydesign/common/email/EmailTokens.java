@@ -110,10 +110,10 @@ public class EmailTokens {
             return null;
         }
 
-        // Verify signature
-        String calculatedDigestText = signToken(value + ":" + timestamp);
-        if (CryptoUtil.isEqualsConstantTime(digestText.toCharArray(),
-                calculatedDigestText.toCharArray())) {
+        // Verify signature. Compare against the raw HMAC, decoding the
+        // base64url digest from the token on the fly.
+        byte[] calculatedDigest = mac.doFinal((value + ":" + timestamp).getBytes());
+        if (CryptoUtil.isEqualsBase64UrlConstantTime(digestText, calculatedDigest)) {
             return value;
         } else {
             logger.error("Token {} has invalid HMAC", token);
@@ -0,0 +1,104 @@
+package foundation.privacybydesign.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the constant-time comparison functions.
+ */
+public class CryptoUtilTest {
+    private static final byte[] DIGEST = {
+            (byte) 0xb1, (byte) 0xa7, 0x46, 0x46, (byte) 0xfb, 0x4f, 0x46, 0x20,
+            0x61, (byte) 0x97, 0x57, (byte) 0x97, (byte) 0xae, 0x05, 0x30, 0x0c,
+            0x58, 0x18, 0x39, (byte) 0xfc, 0x26, (byte) 0xf9, (byte) 0x99, 0x1d,
+            (byte) 0x83, (byte) 0xfb, (byte) 0x9b, 0x38, 0x00, 0x64, 0x55, 0x73,
+    };
+    private static final String ENCODED =
+            Base64.getUrlEncoder().withoutPadding().encodeToString(DIGEST);
+
+    @Test
+    public void testCharArrays() {
+        assertTrue(CryptoUtil.isEqualsConstantTime("abc".toCharArray(), "abc".toCharArray()));
+        assertFalse(CryptoUtil.isEqualsConstantTime("abc".toCharArray(), "abd".toCharArray()));
+        assertFalse(CryptoUtil.isEqualsConstantTime("ab".toCharArray(), "abc".toCharArray()));
+        assertFalse(CryptoUtil.isEqualsConstantTime("abcd".toCharArray(), "abc".toCharArray()));
+    }
+
+    @Test
+    public void testCharArraysHighByte() {
+        // These only differ in the high byte of the char.
+        assertFalse("high byte must be compared",
+                CryptoUtil.isEqualsConstantTime(new char[]{'\u0141'}, new char[]{'A'}));
+    }
+
+    @Test
+    public void testByteArrays() {
+        assertTrue(CryptoUtil.isEqualsConstantTime(new byte[0], new byte[0]));
+        assertTrue(CryptoUtil.isEqualsConstantTime(DIGEST.clone(), DIGEST));
+        byte[] tampered = DIGEST.clone();
+        tampered[31] ^= 1;
+        assertFalse(CryptoUtil.isEqualsConstantTime(tampered, DIGEST));
+        assertFalse(CryptoUtil.isEqualsConstantTime(new byte[0], DIGEST));
+        assertFalse(CryptoUtil.isEqualsConstantTime(DIGEST, new byte[0]));
+    }
+
+    @Test
+    public void testByteBuffers() {
+        ByteBuffer direct = ByteBuffer.allocateDirect(DIGEST.length + 2);
+        direct.put((byte) 0).put(DIGEST).put((byte) 0).flip();
+        direct.position(1).limit(DIGEST.length + 1);
+
+        assertTrue(CryptoUtil.isEqualsConstantTime(direct, ByteBuffer.wrap(DIGEST)));
+        assertTrue("position must not change", direct.position() == 1);
+
+        direct.limit(DIGEST.length);
+        assertFalse(CryptoUtil.isEqualsConstantTime(direct, ByteBuffer.wrap(DIGEST)));
+    }
+
+    @Test
+    public void testCharSequences() {
+        assertTrue(CryptoUtil.isEqualsConstantTime("abc", new StringBuilder("abc")));
+        assertFalse(CryptoUtil.isEqualsConstantTime("abc", "abC"));
+        assertFalse(CryptoUtil.isEqualsConstantTime("", "abc"));
+        assertFalse(CryptoUtil.isEqualsConstantTime("abc", ""));
+    }
+
+    @Test
+    public void testBase64Url() {
+        assertTrue(CryptoUtil.isEqualsBase64UrlConstantTime(ENCODED, DIGEST));
+        for (int length = 0; length < 5; length++) {
+            byte[] digest = new byte[length];
+            for (int i = 0; i < length; i++) {
+                digest[i] = (byte) (0xf0 | i);
+            }
+            String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+            assertTrue(CryptoUtil.isEqualsBase64UrlConstantTime(encoded, digest));
+        }
+    }
+
+    @Test
+    public void testBase64UrlInvalid() {
+        byte[] tampered = DIGEST.clone();
+        tampered[0] ^= 0x80;
+        assertFalse(CryptoUtil.isEqualsBase64UrlConstantTime(ENCODED, tampered));
+
+        assertFalse("truncated",
+                CryptoUtil.isEqualsBase64UrlConstantTime(ENCODED.substring(1), DIGEST));
+        assertFalse("too long",
+                CryptoUtil.isEqualsBase64UrlConstantTime(ENCODED + "A", DIGEST));
+        assertFalse("padding",
+                CryptoUtil.isEqualsBase64UrlConstantTime(ENCODED + "=", DIGEST));
+        assertFalse("standard base64 alphabet",
+                CryptoUtil.isEqualsBase64UrlConstantTime(
+                        ENCODED.replace('-', '+').replace('_', '/'), DIGEST));
+        // "AJ" decodes to the same byte as "AA" but has non-zero unused bits.
+        assertFalse("non-canonical trailing bits",
+                CryptoUtil.isEqualsBase64UrlConstantTime("AJ", new byte[]{0}));
+        assertTrue(CryptoUtil.isEqualsBase64UrlConstantTime("AA", new byte[]{0}));
+    }
+}